@@ -40,4 +40,27 @@ public ABCDataset(TuplesFileReader aReader) throws IOException {
     public ABCRecord[] getRecordsSortedByA() {
         return records;
     }
+
+    public int findRecordIndexWithAGreaterOrEqual(double inclMinA, int fromIndex, int toIndex) {
+        return findRecordIndex(inclMinA, true, fromIndex, toIndex);
+    }
+
+    public int findRecordIndexWithAGreaterThan(double exclMinA, int fromIndex, int toIndex) {
+        return findRecordIndex(exclMinA, false, fromIndex, toIndex);
+    }
+
+    private int findRecordIndex(double minA, boolean inclusive, int fromIndex, int toIndex) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Double.compare(records[middle].getA(), minA);
+            if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
 }
@@ -0,0 +1,42 @@
+package org.query.calc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Result of a QueryIndex lookup of many a's: the i-th looked up a and
+ * its SUM(x * y * z), if t1 has that a.
+ */
+public final class IndexLookup {
+    private final double[] keys;
+    private final double[] sums;
+    // null when every key has been found
+    private final boolean[] found;
+
+    IndexLookup(double[] keys, double[] sums, boolean[] found) {
+        this.keys = keys;
+        this.sums = sums;
+        this.found = found;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public double getA(int i) {
+        return keys[i];
+    }
+
+    public boolean isFound(int i) {
+        return found == null || found[i];
+    }
+
+    /**
+     * @throws NoSuchElementException if t1 has no such a, same as OptionalDouble
+     */
+    public double getSum(int i) {
+        if (!isFound(i)) {
+            throw new NoSuchElementException("No a = " + keys[i] + " in t1.");
+        }
+        return sums[i];
+    }
+}
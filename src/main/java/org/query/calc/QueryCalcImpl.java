@@ -10,16 +10,8 @@
 import java.util.*;
 
 public class QueryCalcImpl implements QueryCalc {
-    private static final NumberFormat OUTPUT_FORMAT;
     public static final int MAX_RECORDS = 10;
 
-    static {
-        OUTPUT_FORMAT = NumberFormat.getInstance(Locale.US);
-        OUTPUT_FORMAT.setMaximumFractionDigits(6);
-        OUTPUT_FORMAT.setMinimumFractionDigits(6);
-        OUTPUT_FORMAT.setGroupingUsed(false);
-    }
-
     /**
      * Notes on the optimizations used:
      *
@@ -44,6 +36,10 @@ public class QueryCalcImpl implements QueryCalc {
      * to verify the performance and test edge cases of the
      * implementation.
      *
+     * The implementation keeps no state between calls (NumberFormat is not
+     * thread-safe, so it is created per output file), thus a single instance
+     * may serve concurrent select calls, e.g. from the QueryScheduler.
+     *
      * Single additional dependency 'implementation 'net.sf.trove4j:trove4j:3.0.3'
      * has been added for the fast collections for primitive data types.
      */
@@ -76,16 +72,8 @@ public void select(Path t1, Path t2, Path t3, Path output) throws IOException {
         // In this context it means, that in case of tie on s-value you should prefer value of a, with a lower row number.
         // In case multiple occurrences, you may assume that group has a row number of the first occurrence.
 
-        BCDataset bcDataset;
-        try (TuplesFileReader bReader = TuplesFileReader.open(t2);
-             TuplesFileReader cReader = TuplesFileReader.open(t3)) {
-            bcDataset = new BCDataset(bReader, cReader);
-        }
-
-        ABCDataset abcDataset;
-        try(TuplesFileReader aReader = TuplesFileReader.open(t1)) {
-            abcDataset = new ABCDataset(aReader);
-        }
+        BCDataset bcDataset = readBCDataset(t2, t3);
+        ABCDataset abcDataset = readABCDataset(t1);
 
         BCRecord[] bc = bcDataset.getRecordsSortedByBPlusC();
         ABCRecord[] abc = abcDataset.getRecordsSortedByA();
@@ -149,7 +137,37 @@ public void select(Path t1, Path t2, Path t3, Path output) throws IOException {
         writeOutput(output, result);
     }
 
+    /**
+     * Builds the same datasets as select does, but keeps them for the point
+     * and range lookups instead of computing the top records.
+     */
+    public QueryIndex buildIndex(Path t1, Path t2, Path t3) throws IOException {
+        return new QueryIndex(readBCDataset(t2, t3), readABCDataset(t1));
+    }
+
+    private static BCDataset readBCDataset(Path t2, Path t3) throws IOException {
+        try (TuplesFileReader bReader = TuplesFileReader.open(t2);
+             TuplesFileReader cReader = TuplesFileReader.open(t3)) {
+            return new BCDataset(bReader, cReader);
+        }
+    }
+
+    private static ABCDataset readABCDataset(Path t1) throws IOException {
+        try (TuplesFileReader aReader = TuplesFileReader.open(t1)) {
+            return new ABCDataset(aReader);
+        }
+    }
+
+    private static NumberFormat createOutputFormat() {
+        NumberFormat format = NumberFormat.getInstance(Locale.US);
+        format.setMaximumFractionDigits(6);
+        format.setMinimumFractionDigits(6);
+        format.setGroupingUsed(false);
+        return format;
+    }
+
     private static void writeOutput(Path output, List<ABCRecord> result) throws IOException {
+        NumberFormat outputFormat = createOutputFormat();
         Files.write(output, () -> new Iterator<CharSequence>() {
             private int linePosition = 0;
             private final StringBuilder text = new StringBuilder(50);
@@ -167,9 +185,9 @@ public CharSequence next() {
                 } else {
                     text.delete(0, text.length());
                     ABCRecord record = result.get(linePosition - 1); // - 1 because the first row is the count
-                    text.append(OUTPUT_FORMAT.format(record.getA()))
+                    text.append(outputFormat.format(record.getA()))
                         .append(' ')
-                        .append(OUTPUT_FORMAT.format(record.getSumXyzProduct()));
+                        .append(outputFormat.format(record.getSumXyzProduct()));
                 }
                 //System.out.println(text);
                 linePosition += 1;
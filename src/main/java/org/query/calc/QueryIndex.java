@@ -0,0 +1,108 @@
+package org.query.calc;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.util.OptionalDouble;
+
+/**
+ * Answers SUM(x * y * z) of the select query for particular values of a
+ * without computing the whole result.
+ *
+ * The index keeps the t2 and t3 join sorted by b + c with the suffix
+ * SUM(Y * Z) sums, and the t1 table grouped and sorted by a, so each lookup
+ * is a pair of binary searches. The index is never modified after it's
+ * built, thus it may be shared across threads.
+ */
+public final class QueryIndex {
+    private final BCDataset bcDataset;
+    private final ABCDataset abcDataset;
+
+    QueryIndex(BCDataset bcDataset, ABCDataset abcDataset) {
+        this.bcDataset = bcDataset;
+        this.abcDataset = abcDataset;
+    }
+
+    /**
+     * @return the number of distinct a values
+     */
+    public int size() {
+        return abcDataset.getRecordsSortedByA().length;
+    }
+
+    /**
+     * @return SUM(x * y * z) for the given a, or empty if t1 has no such a
+     */
+    public OptionalDouble lookup(double a) {
+        ABCRecord[] abc = abcDataset.getRecordsSortedByA();
+        int aIndex = abcDataset.findRecordIndexWithAGreaterOrEqual(a, 0, abc.length);
+        if (aIndex == abc.length || Double.compare(abc[aIndex].getA(), a) != 0) {
+            return OptionalDouble.empty();
+        }
+        BCRecord[] bc = bcDataset.getRecordsSortedByBPlusC();
+        int bcIndex = bcDataset.findRecordIndexWithBPlusCGreaterThan(a, 0, bc.length);
+        return OptionalDouble.of(sumXyzProduct(abc[aIndex], bcIndex));
+    }
+
+    /**
+     * @return all a in [lo, hi] in the ascending order with their SUM(x * y * z)
+     */
+    public IndexLookup lookupRange(double lo, double hi) {
+        ABCRecord[] abc = abcDataset.getRecordsSortedByA();
+        BCRecord[] bc = bcDataset.getRecordsSortedByBPlusC();
+        int fromIndex = abcDataset.findRecordIndexWithAGreaterOrEqual(lo, 0, abc.length);
+        int toIndex = abcDataset.findRecordIndexWithAGreaterThan(hi, fromIndex, abc.length);
+
+        double[] keys = new double[toIndex - fromIndex];
+        double[] sums = new double[keys.length];
+        int bcIndex = 0;
+        for (int aIndex = fromIndex; aIndex < toIndex; aIndex++) {
+            ABCRecord abcRecord = abc[aIndex];
+            bcIndex = bcDataset.findRecordIndexWithBPlusCGreaterThan(abcRecord.getA(), bcIndex, bc.length);
+            keys[aIndex - fromIndex] = abcRecord.getA();
+            sums[aIndex - fromIndex] = sumXyzProduct(abcRecord, bcIndex);
+        }
+        return new IndexLookup(keys, sums, null);
+    }
+
+    /**
+     * Looks up many keys in their ascending order, so that each binary
+     * search starts from the position found for the previous key.
+     *
+     * @return the keys in the same order with their SUM(x * y * z),
+     *         not found for those absent from t1
+     */
+    public IndexLookup lookupAll(double[] keys) {
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, (i, j) -> Double.compare(keys[i], keys[j]));
+
+        double[] sums = new double[keys.length];
+        boolean[] found = new boolean[keys.length];
+        ABCRecord[] abc = abcDataset.getRecordsSortedByA();
+        BCRecord[] bc = bcDataset.getRecordsSortedByBPlusC();
+        int aIndex = 0;
+        int bcIndex = 0;
+        for (int keyIndex : order) {
+            double a = keys[keyIndex];
+            aIndex = abcDataset.findRecordIndexWithAGreaterOrEqual(a, aIndex, abc.length);
+            if (aIndex == abc.length || Double.compare(abc[aIndex].getA(), a) != 0) {
+                continue;
+            }
+            bcIndex = bcDataset.findRecordIndexWithBPlusCGreaterThan(a, bcIndex, bc.length);
+            sums[keyIndex] = sumXyzProduct(abc[aIndex], bcIndex);
+            found[keyIndex] = true;
+        }
+        return new IndexLookup(keys.clone(), sums, found);
+    }
+
+    private double sumXyzProduct(ABCRecord abcRecord, int bcIndex) {
+        BCRecord[] bc = bcDataset.getRecordsSortedByBPlusC();
+        if (bcIndex < bc.length) {
+            return abcRecord.getTotalX() * bc[bcIndex].getSumYzProduct();
+        }
+        // LEFT JOIN without matching b + c
+        return 0;
+    }
+}
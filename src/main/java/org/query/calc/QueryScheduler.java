@@ -0,0 +1,263 @@
+package org.query.calc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs select queries of a shared QueryCalc on a bounded thread pool.
+ *
+ * 1. Admission control: each query reserves the memory estimated from
+ *    the row-count headers of its tables and is started only when the
+ *    reservation fits into the budget. A query estimated above the whole
+ *    budget is started alone, when nothing else is running.
+ * 2. Fair queuing: every tenant has its own queue and the tenants with
+ *    pending queries are served round-robin, so a tenant submitting many
+ *    queries doesn't starve the others. The tenant next in turn is never
+ *    skipped, thus large queries don't starve behind the small ones either.
+ * 3. Metrics: queue depth, running, completed, failed and cancelled
+ *    counts and the total queue wait and execution times.
+ *
+ * Cancelling the returned future of a queued query drops it before it
+ * takes a thread or a memory reservation.
+ */
+public final class QueryScheduler implements Closeable {
+    // BCRecord object with 5 doubles plus the reference in the joined array
+    static final long BC_RECORD_BYTES = 64;
+    // raw c and z values kept while joining t2 and t3
+    static final long C_ROW_BYTES = 16;
+    // ABCRecord object plus the grouping hash map slot
+    static final long ABC_RECORD_BYTES = 80;
+    // buffers of the three table readers
+    static final long QUERY_OVERHEAD_BYTES = 3L * TuplesFileReader.BUFFER_SIZE;
+
+    private final QueryCalc queryCalc;
+    private final int maxRunning;
+    private final long memoryBudget;
+    private final ExecutorService executor;
+
+    private final Object lock = new Object();
+    private final Map<String, ArrayDeque<ScheduledQuery>> tenantQueues = new HashMap<>();
+    // tenants with pending queries in the round-robin order
+    private final ArrayDeque<String> tenantTurns = new ArrayDeque<>();
+    private int queueDepth;
+    private int running;
+    private long reservedMemory;
+    private boolean closed;
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    private final AtomicLong totalExecutionNanos = new AtomicLong();
+
+    public QueryScheduler(QueryCalc queryCalc, int threads, long memoryBudget) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive: " + memoryBudget);
+        }
+        this.queryCalc = queryCalc;
+        this.maxRunning = threads;
+        this.memoryBudget = memoryBudget;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "query-scheduler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Void> submit(String tenant, Path t1, Path t2, Path t3, Path output) throws IOException {
+        Objects.requireNonNull(tenant, "The tenant must not be null.");
+        long estimatedMemory = Math.min(estimateMemory(t1, t2, t3), memoryBudget);
+        ScheduledQuery query = new ScheduledQuery(t1, t2, t3, output, estimatedMemory);
+        synchronized (lock) {
+            if (closed) {
+                throw new RejectedExecutionException("The scheduler has been closed.");
+            }
+            ArrayDeque<ScheduledQuery> queue = tenantQueues.get(tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                tenantQueues.put(tenant, queue);
+            }
+            if (queue.isEmpty()) {
+                tenantTurns.addLast(tenant);
+            }
+            queue.addLast(query);
+            queueDepth += 1;
+            dispatch();
+        }
+        return query.result;
+    }
+
+    /**
+     * Estimates the memory taken by the select of the given tables,
+     * reading only the row-count headers.
+     */
+    public static long estimateMemory(Path t1, Path t2, Path t3) throws IOException {
+        long aCount = TuplesFileReader.readCount(t1);
+        long bCount = TuplesFileReader.readCount(t2);
+        long cCount = TuplesFileReader.readCount(t3);
+        return QUERY_OVERHEAD_BYTES + bCount * cCount * BC_RECORD_BYTES + cCount * C_ROW_BYTES
+            + aCount * ABC_RECORD_BYTES;
+    }
+
+    // must be called holding the lock
+    private void dispatch() {
+        while (running < maxRunning && !tenantTurns.isEmpty()) {
+            String tenant = tenantTurns.peekFirst();
+            ArrayDeque<ScheduledQuery> queue = tenantQueues.get(tenant);
+            ScheduledQuery query = queue.peekFirst();
+            if (query.result.isDone()) {
+                // cancelled while queued, the tenant keeps its turn
+                queue.removeFirst();
+                if (queue.isEmpty()) {
+                    tenantTurns.removeFirst();
+                    tenantQueues.remove(tenant);
+                }
+                queueDepth -= 1;
+                cancelledCount.incrementAndGet();
+                continue;
+            }
+            if (running > 0 && reservedMemory + query.estimatedMemory > memoryBudget) {
+                // waiting for the running queries to release the memory
+                return;
+            }
+            queue.removeFirst();
+            tenantTurns.removeFirst();
+            if (queue.isEmpty()) {
+                tenantQueues.remove(tenant);
+            } else {
+                tenantTurns.addLast(tenant);
+            }
+            queueDepth -= 1;
+            running += 1;
+            reservedMemory += query.estimatedMemory;
+            executor.execute(() -> run(query));
+        }
+    }
+
+    private void run(ScheduledQuery query) {
+        long startedAt = System.nanoTime();
+        totalQueueWaitNanos.addAndGet(startedAt - query.submittedAt);
+        Throwable failure = null;
+        boolean cancelled = query.result.isDone();
+        if (!cancelled) {
+            try {
+                queryCalc.select(query.t1, query.t2, query.t3, query.output);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            cancelled = query.result.isDone();
+        }
+        totalExecutionNanos.addAndGet(System.nanoTime() - startedAt);
+        synchronized (lock) {
+            running -= 1;
+            reservedMemory -= query.estimatedMemory;
+            if (!closed) {
+                dispatch();
+            }
+        }
+        // completing after the bookkeeping so that the metrics are up to date for the caller
+        if (cancelled) {
+            cancelledCount.incrementAndGet();
+        } else if (failure == null) {
+            completedCount.incrementAndGet();
+            query.result.complete(null);
+        } else {
+            failedCount.incrementAndGet();
+            query.result.completeExceptionally(failure);
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queueDepth;
+        }
+    }
+
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public long getReservedMemory() {
+        synchronized (lock) {
+            return reservedMemory;
+        }
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    public long getTotalQueueWaitNanos() {
+        return totalQueueWaitNanos.get();
+    }
+
+    public long getTotalExecutionNanos() {
+        return totalExecutionNanos.get();
+    }
+
+    /**
+     * Cancels the queued queries and lets the running ones finish.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ArrayDeque<ScheduledQuery> queue : tenantQueues.values()) {
+                for (ScheduledQuery query : queue) {
+                    query.result.cancel(false);
+                }
+                cancelledCount.addAndGet(queue.size());
+            }
+            tenantQueues.clear();
+            tenantTurns.clear();
+            queueDepth = 0;
+        }
+        executor.shutdown();
+    }
+
+    private static final class ScheduledQuery {
+        private final Path t1;
+        private final Path t2;
+        private final Path t3;
+        private final Path output;
+        private final long estimatedMemory;
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private ScheduledQuery(Path t1, Path t2, Path t3, Path output, long estimatedMemory) {
+            this.t1 = t1;
+            this.t2 = t2;
+            this.t3 = t3;
+            this.output = output;
+            this.estimatedMemory = estimatedMemory;
+        }
+    }
+}
@@ -5,6 +5,10 @@
 import java.nio.file.Path;
 
 final class TuplesFileReader implements Closeable {
+    static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    // enough for the row-count header
+    private static final int HEADER_BUFFER_SIZE = 16;
+
     private final int count;
     private final InputStream inputStream;
     private final StringBuilder text = new StringBuilder(30);
@@ -57,11 +61,23 @@ public void close() throws IOException {
 
     public static TuplesFileReader open(Path path) throws IOException {
         InputStream inputStream = Files.newInputStream(path);
-        BufferedInputStream in = new BufferedInputStream(inputStream, 4 * 1024 * 1024);
+        BufferedInputStream in = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        return new TuplesFileReader(readCount(in), in);
+    }
+
+    /**
+     * Reads only the row-count header, without allocating the buffer for the records.
+     */
+    public static int readCount(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), HEADER_BUFFER_SIZE)) {
+            return readCount(in);
+        }
+    }
+
+    private static int readCount(InputStream in) throws IOException {
         StringBuilder countReader = new StringBuilder(7);
         readNonWhitespaceValue(countReader, in);
-        int count = Integer.parseInt(countReader, 0, countReader.length(), 10);
-        return new TuplesFileReader(count, in);
+        return Integer.parseInt(countReader, 0, countReader.length(), 10);
     }
 
     private static void readNonWhitespaceValue(StringBuilder text, InputStream in) throws IOException {
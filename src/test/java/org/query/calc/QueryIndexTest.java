@@ -0,0 +1,136 @@
+package org.query.calc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueryIndexTest {
+    private static final double DELTA = 1e-8;
+
+    private QueryIndex buildIndex(String caseName) throws IOException, URISyntaxException {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Path t1 = Path.of(classLoader.getResource(caseName + "/t1").toURI());
+        Path t2 = Path.of(classLoader.getResource(caseName + "/t2").toURI());
+        Path t3 = Path.of(classLoader.getResource(caseName + "/t3").toURI());
+        return new QueryCalcImpl().buildIndex(t1, t2, t3);
+    }
+
+    // both cases have less than 10 distinct a's, so the expected result has all of them
+    private void doTestLookupsMatchSelect(String caseName) throws IOException, URISyntaxException {
+        QueryIndex index = buildIndex(caseName);
+        Path expectedResult = Path.of(getClass().getClassLoader().getResource(caseName + "/expected-result").toURI());
+        List<String> lines = Files.readAllLines(expectedResult);
+        int count = Integer.parseInt(lines.get(0));
+        assertEquals(count, index.size());
+
+        double[] keys = new double[count];
+        double[] expected = new double[count];
+        for (int i = 0; i < count; i++) {
+            String[] split = lines.get(i + 1).split(" ");
+            keys[i] = Double.parseDouble(split[0]);
+            expected[i] = Double.parseDouble(split[1]);
+            assertEquals(expected[i], index.lookup(keys[i]).getAsDouble(), DELTA, caseName);
+        }
+        IndexLookup lookup = index.lookupAll(keys);
+        for (int i = 0; i < count; i++) {
+            assertTrue(lookup.isFound(i), caseName);
+            assertEquals(expected[i], lookup.getSum(i), DELTA, caseName);
+        }
+    }
+
+    @Test
+    public void testCase0() throws IOException, URISyntaxException {
+        doTestLookupsMatchSelect("case-0");
+    }
+
+    @Test
+    public void testCase1() throws IOException, URISyntaxException {
+        doTestLookupsMatchSelect("case-1");
+    }
+
+    @Test
+    public void testRange() throws IOException, URISyntaxException {
+        QueryIndex index = buildIndex("case-1");
+
+        IndexLookup range = index.lookupRange(2.5, 4);
+        assertEquals(2, range.size());
+        assertEquals(3, range.getA(0), DELTA);
+        assertEquals(6, range.getSum(0), DELTA);
+        assertEquals(4, range.getA(1), DELTA);
+        assertEquals(7, range.getSum(1), DELTA);
+
+        // both bounds are inclusive
+        IndexLookup inclusive = index.lookupRange(3, 5);
+        assertEquals(3, inclusive.size());
+        assertEquals(3, inclusive.getA(0), DELTA);
+        assertEquals(6, inclusive.getSum(0), DELTA);
+        assertEquals(5, inclusive.getA(2), DELTA);
+        assertEquals(0, inclusive.getSum(2), DELTA);
+
+        assertEquals(0, index.lookupRange(6, 10).size());
+        assertEquals(0, index.lookupRange(4, 3).size());
+    }
+
+    @Test
+    public void testMissingAndDuplicateKeys() throws IOException, URISyntaxException {
+        QueryIndex index = buildIndex("case-1");
+
+        assertFalse(index.lookup(2.5).isPresent());
+
+        IndexLookup lookup = index.lookupAll(new double[] {5, 100, 2, 4, -1, 2, 5});
+        assertEquals(7, lookup.size());
+        double[] expected = {0, 0, 5, 7, 0, 5, 0};
+        boolean[] found = {true, false, true, true, false, true, true};
+        for (int i = 0; i < lookup.size(); i++) {
+            assertEquals(found[i], lookup.isFound(i));
+            if (found[i]) {
+                assertEquals(expected[i], lookup.getSum(i), DELTA);
+            }
+        }
+        assertEquals(100, lookup.getA(1), DELTA);
+        assertThrows(NoSuchElementException.class, () -> lookup.getSum(1));
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        QueryIndex index = buildIndex("case-1");
+        double[] keys = {2, 3, 4, 5};
+        double[] expected = {5, 6, 7, 0};
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(() -> {
+                    for (int n = 0; n < 1000; n++) {
+                        int i = n % keys.length;
+                        assertEquals(expected[i], index.lookup(keys[i]).getAsDouble(), DELTA);
+                        assertEquals(expected[i], index.lookupAll(keys).getSum(i), DELTA);
+                        assertEquals(expected[i], index.lookupRange(2, 5).getSum(i), DELTA);
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
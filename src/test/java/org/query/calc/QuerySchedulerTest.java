@@ -0,0 +1,189 @@
+package org.query.calc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.query.calc.ResultComparator.assertFilesEqual;
+
+public class QuerySchedulerTest {
+    private static final String[] CASES = {"case-0", "case-1", "case-2", "case-3"};
+
+    private Path resource(String caseName, String fileName) throws URISyntaxException {
+        return Path.of(getClass().getClassLoader().getResource(caseName + "/" + fileName).toURI());
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private CompletableFuture<Void> submit(QueryScheduler scheduler, String tenant, String output)
+        throws IOException, URISyntaxException {
+        return scheduler.submit(tenant, resource("case-0", "t1"), resource("case-0", "t2"), resource("case-0", "t3"),
+            Path.of(output));
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> results) throws Exception {
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get();
+    }
+
+    @Test
+    public void testConcurrentSelectsOnSharedInstance() throws Exception {
+        TemporaryFolder temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+        try (QueryScheduler scheduler = new QueryScheduler(new QueryCalcImpl(), 4, Long.MAX_VALUE)) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            List<String> caseNames = new ArrayList<>();
+            List<Path> outputs = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String caseName = CASES[i % CASES.length];
+                Path output = temporaryFolder.newFile("actual-result-" + i).toPath();
+                results.add(scheduler.submit("tenant-" + (i % 3),
+                    resource(caseName, "t1"), resource(caseName, "t2"), resource(caseName, "t3"), output));
+                caseNames.add(caseName);
+                outputs.add(output);
+            }
+            for (int i = 0; i < results.size(); i++) {
+                results.get(i).get();
+                String caseName = caseNames.get(i);
+                assertFilesEqual(() -> caseName, resource(caseName, "expected-result"), outputs.get(i));
+            }
+            assertEquals(40, scheduler.getCompletedCount());
+            assertEquals(0, scheduler.getQueueDepth());
+        } finally {
+            temporaryFolder.delete();
+        }
+    }
+
+    @Test
+    public void testMemoryBudgetLimitsRunningQueries() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        QueryCalc queryCalc = (t1, t2, t3, output) -> await(release);
+        long estimatedMemory = QueryScheduler.estimateMemory(
+            resource("case-0", "t1"), resource("case-0", "t2"), resource("case-0", "t3"));
+        try (QueryScheduler scheduler = new QueryScheduler(queryCalc, 4, estimatedMemory * 2)) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(submit(scheduler, "tenant", "query-" + i));
+            }
+            assertEquals(2, scheduler.getRunningCount());
+            assertEquals(6, scheduler.getQueueDepth());
+            assertEquals(2 * estimatedMemory, scheduler.getReservedMemory());
+
+            release.countDown();
+            awaitAll(results);
+            assertEquals(8, scheduler.getCompletedCount());
+            assertEquals(0, scheduler.getReservedMemory());
+        }
+    }
+
+    @Test
+    public void testQueryAboveBudgetRunsAlone() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        QueryCalc queryCalc = (t1, t2, t3, output) -> await(release);
+        long estimatedMemory = QueryScheduler.estimateMemory(
+            resource("case-0", "t1"), resource("case-0", "t2"), resource("case-0", "t3"));
+        try (QueryScheduler scheduler = new QueryScheduler(queryCalc, 4, estimatedMemory / 2)) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(submit(scheduler, "tenant-" + i, "query-" + i));
+            }
+            assertEquals(1, scheduler.getRunningCount());
+            assertEquals(2, scheduler.getQueueDepth());
+            assertEquals(estimatedMemory / 2, scheduler.getReservedMemory());
+
+            release.countDown();
+            awaitAll(results);
+            assertEquals(3, scheduler.getCompletedCount());
+        }
+    }
+
+    @Test
+    public void testTenantsServedRoundRobin() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        QueryCalc queryCalc = (t1, t2, t3, output) -> {
+            started.add(output.toString());
+            await(release);
+        };
+        try (QueryScheduler scheduler = new QueryScheduler(queryCalc, 1, Long.MAX_VALUE)) {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            // a0 takes the only thread, so the rest are queued
+            results.add(submit(scheduler, "a", "a0"));
+            results.add(submit(scheduler, "a", "a1"));
+            results.add(submit(scheduler, "a", "a2"));
+            results.add(submit(scheduler, "a", "a3"));
+            results.add(submit(scheduler, "b", "b0"));
+            assertEquals(4, scheduler.getQueueDepth());
+
+            release.countDown();
+            awaitAll(results);
+            assertEquals(List.of("a0", "a1", "b0", "a2", "a3"), started);
+        }
+    }
+
+    @Test
+    public void testCancelledQueryNeverSelected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        QueryCalc queryCalc = (t1, t2, t3, output) -> {
+            started.add(output.toString());
+            await(release);
+        };
+        try (QueryScheduler scheduler = new QueryScheduler(queryCalc, 1, Long.MAX_VALUE)) {
+            CompletableFuture<Void> first = submit(scheduler, "a", "q0");
+            CompletableFuture<Void> cancelled = submit(scheduler, "a", "q1");
+            CompletableFuture<Void> last = submit(scheduler, "b", "q2");
+            cancelled.cancel(false);
+
+            release.countDown();
+            first.get();
+            last.get();
+            assertEquals(List.of("q0", "q2"), started);
+            assertEquals(2, scheduler.getCompletedCount());
+            assertEquals(1, scheduler.getCancelledCount());
+            assertEquals(0, scheduler.getQueueDepth());
+            assertEquals(0, scheduler.getReservedMemory());
+        }
+    }
+
+    @Test
+    public void testFailedQueries() throws Exception {
+        QueryCalc queryCalc = (t1, t2, t3, output) -> {
+            throw new IOException("Failed on purpose.");
+        };
+        try (QueryScheduler scheduler = new QueryScheduler(queryCalc, 2, Long.MAX_VALUE)) {
+            CompletableFuture<Void> result = submit(scheduler, "tenant", "query");
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertEquals(IOException.class, e.getCause().getClass());
+            assertEquals(1, scheduler.getFailedCount());
+            assertEquals(0, scheduler.getCompletedCount());
+            assertEquals(0, scheduler.getRunningCount());
+        }
+    }
+
+    @Test
+    public void testNullTenantRejected() throws Exception {
+        try (QueryScheduler scheduler = new QueryScheduler(new QueryCalcImpl(), 1, Long.MAX_VALUE)) {
+            assertThrows(NullPointerException.class, () -> submit(scheduler, null, "query"));
+            assertEquals(0, scheduler.getQueueDepth());
+        }
+    }
+}